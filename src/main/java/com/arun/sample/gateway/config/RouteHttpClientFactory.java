@@ -0,0 +1,40 @@
+package com.arun.sample.gateway.config;
+
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.cloud.gateway.config.HttpClientCustomizer;
+import org.springframework.cloud.gateway.config.HttpClientFactory;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.config.HttpClientSslConfigurer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.List;
+
+/**
+ * Gateway {@link HttpClientFactory} using a route dedicated {@link ConnectionProvider}, so the route client keeps the
+ * gateway wide settings (ssl, proxy, http2, timeouts, customizers) of the shared client except for the pool.
+ */
+public class RouteHttpClientFactory extends HttpClientFactory {
+
+    private final ConnectionProvider connectionProvider;
+
+    public RouteHttpClientFactory(HttpClientProperties properties, ServerProperties serverProperties,
+                                  HttpClientSslConfigurer sslConfigurer, List<HttpClientCustomizer> customizers,
+                                  ConnectionProvider connectionProvider) {
+        super(properties, serverProperties, sslConfigurer, customizers);
+        this.connectionProvider = connectionProvider;
+    }
+
+    @Override
+    protected ConnectionProvider buildConnectionProvider(HttpClientProperties properties) {
+        return connectionProvider;
+    }
+
+    public HttpClient create() {
+        try {
+            return createInstance();
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to create http client for pool " + connectionProvider.name(), e);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.arun.sample.gateway.config;
+
+import com.arun.sample.gateway.model.UpstreamClientSettings;
+import com.arun.sample.gateway.model.UpstreamClientSettings.PoolSettings;
+import io.netty.channel.ChannelOption;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.cloud.gateway.config.HttpClientCustomizer;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.config.HttpClientSslConfigurer;
+import org.springframework.cloud.gateway.event.RefreshRoutesResultEvent;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static com.arun.sample.gateway.constants.Constants.*;
+
+/**
+ * Builds the upstream {@link HttpClient} of every route which declares an {@code http-client} block in its metadata.
+ * Clients are built when routes are loaded or refreshed, request path only reads the current map. Routes with a
+ * {@code pool} block get their own {@link ConnectionProvider} so a slow upstream can not take the connections of the
+ * other routes, every dedicated pool publishes the reactor netty {@code reactor.netty.connection.provider.*} metrics
+ * tagged with {@code name=upstream-<routeId>}. Route with invalid http-client metadata is logged and uses the shared client.
+ */
+@Component
+public class UpstreamHttpClientRegistry implements DisposableBean {
+
+    private static final Log logger = LogFactory.getLog(UpstreamHttpClientRegistry.class);
+
+    private final HttpClientProperties properties;
+    private final ServerProperties serverProperties;
+    private final HttpClientSslConfigurer sslConfigurer;
+    private final ObjectProvider<HttpClientCustomizer> customizers;
+    private final HttpClient sharedHttpClient;
+    private volatile Map<String, RouteClient> routeClients = Map.of();
+
+    public UpstreamHttpClientRegistry(HttpClientProperties properties, ServerProperties serverProperties,
+                                      HttpClientSslConfigurer sslConfigurer, ObjectProvider<HttpClientCustomizer> customizers,
+                                      HttpClient sharedHttpClient) {
+        this.properties = properties;
+        this.serverProperties = serverProperties;
+        this.sslConfigurer = sslConfigurer;
+        this.customizers = customizers;
+        this.sharedHttpClient = sharedHttpClient;
+    }
+
+    /**
+     * get the http client configured for the route
+     *
+     * @param route
+     * @return route client or null when route has no (valid) http-client metadata and shared client should be used
+     */
+    public HttpClient getHttpClient(Route route) {
+        RouteClient routeClient = routeClients.get(route.getId());
+        return routeClient == null ? null : routeClient.httpClient();
+    }
+
+    @EventListener
+    public void onRefreshRoutesResult(RefreshRoutesResultEvent event) {
+        if (event.isSuccess() && event.getSource() instanceof RouteLocator routeLocator) {
+            routeLocator.getRoutes().collectList().subscribe(this::refresh,
+                    e -> logger.error("Exception while building upstream http clients ", e));
+        }
+    }
+
+    /**
+     * build clients of new or changed routes, keep unchanged ones and dispose the clients of removed routes
+     *
+     * @param routes
+     */
+    synchronized void refresh(List<Route> routes) {
+        Map<String, RouteClient> previous = routeClients;
+        Map<String, RouteClient> current = new HashMap<>();
+        for (Route route : routes) {
+            try {
+                parse(route.getId(), route.getMetadata().get(HTTP_CLIENT_METADATA_KEY)).ifPresent(settings -> {
+                    RouteClient existing = previous.get(route.getId());
+                    current.put(route.getId(), existing != null && existing.settings().equals(settings)
+                            ? existing : build(route.getId(), settings));
+                });
+            } catch (RuntimeException e) {
+                logger.error("Invalid http-client metadata for route " + route.getId() + ", using shared client ", e);
+            }
+        }
+        routeClients = Map.copyOf(current);
+        previous.forEach((routeId, routeClient) -> {
+            if (current.get(routeId) != routeClient) {
+                routeClient.dispose();
+            }
+        });
+    }
+
+    private RouteClient build(String routeId, UpstreamClientSettings settings) {
+        ConnectionProvider connectionProvider = settings.pool() == null ? null : buildConnectionProvider(routeId, settings.pool());
+        try {
+            HttpClient httpClient = createClient(connectionProvider);
+            if (settings.protocol() != null) {
+                httpClient = configureProtocol(routeId, settings.protocol(), httpClient);
+            }
+            if (settings.keepAlive() != null) {
+                httpClient = httpClient.keepAlive(settings.keepAlive());
+            }
+            if (settings.soKeepAlive() != null) {
+                httpClient = httpClient.option(ChannelOption.SO_KEEPALIVE, settings.soKeepAlive());
+            }
+            if (settings.tcpNoDelay() != null) {
+                httpClient = httpClient.option(ChannelOption.TCP_NODELAY, settings.tcpNoDelay());
+            }
+            return new RouteClient(settings, httpClient, connectionProvider);
+        } catch (RuntimeException e) {
+            if (connectionProvider != null) {
+                connectionProvider.disposeLater().subscribe();
+            }
+            throw e;
+        }
+    }
+
+    private ConnectionProvider buildConnectionProvider(String routeId, PoolSettings pool) {
+        ConnectionProvider.Builder builder = ConnectionProvider.builder(UPSTREAM_POOL_NAME_PREFIX + routeId).metrics(true);
+        Optional.ofNullable(pool.maxConnections()).ifPresent(builder::maxConnections);
+        Optional.ofNullable(pool.pendingAcquireMaxCount()).ifPresent(builder::pendingAcquireMaxCount);
+        Optional.ofNullable(pool.pendingAcquireTimeout()).ifPresent(builder::pendingAcquireTimeout);
+        Optional.ofNullable(pool.maxIdleTime()).ifPresent(builder::maxIdleTime);
+        Optional.ofNullable(pool.maxLifeTime()).ifPresent(builder::maxLifeTime);
+        Optional.ofNullable(pool.evictInBackground()).ifPresent(builder::evictInBackground);
+        return builder.build();
+    }
+
+    /**
+     * create the client on the dedicated pool with the gateway http client factory, route without pool block
+     * starts from the shared gateway client
+     *
+     * @param connectionProvider
+     * @return
+     */
+    private HttpClient createClient(ConnectionProvider connectionProvider) {
+        if (connectionProvider == null) {
+            return sharedHttpClient;
+        }
+        return new RouteHttpClientFactory(properties, serverProperties, sslConfigurer, customizers.orderedStream().toList(),
+                connectionProvider).create();
+    }
+
+    private HttpClient configureProtocol(String routeId, String protocol, HttpClient httpClient) {
+        return switch (protocol.toLowerCase()) {
+            case "http11" -> httpClient.protocol(HttpProtocol.HTTP11);
+            // h2 is negotiated with ALPN so keep http/1.1 as fallback for upstream without h2 support
+            case "h2" -> {
+                HttpClient h2Client = httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11);
+                yield h2Client.configuration().sslProvider() == null ? h2Client.secure() : h2Client;
+            }
+            // h2c is used with prior knowledge, upstream must accept cleartext http2 directly
+            case "h2c" -> httpClient.protocol(HttpProtocol.H2C);
+            // parse already rejected any other protocol
+            default -> throw new IllegalStateException(String.format("Unexpected http-client protocol %s for route %s", protocol, routeId));
+        };
+    }
+
+    static Optional<UpstreamClientSettings> parse(String routeId, Object value) {
+        if (value == null) {
+            return Optional.empty();
+        }
+        Map<String, Object> valueMap = getMap(routeId, HTTP_CLIENT_METADATA_KEY, value);
+        Map<String, Object> tcp = getMap(routeId, HTTP_CLIENT_TCP_KEY, valueMap.getOrDefault(HTTP_CLIENT_TCP_KEY, Map.of()));
+        Map<String, Object> pool = valueMap.get(HTTP_CLIENT_POOL_KEY) == null ? null
+                : getMap(routeId, HTTP_CLIENT_POOL_KEY, valueMap.get(HTTP_CLIENT_POOL_KEY));
+        PoolSettings poolSettings = pool == null ? null : new PoolSettings(
+                getInteger(routeId, "max-connections", pool.get("max-connections")),
+                getInteger(routeId, "pending-acquire-max-count", pool.get("pending-acquire-max-count")),
+                getMillis(routeId, "pending-acquire-timeout", pool.get("pending-acquire-timeout")),
+                getMillis(routeId, "max-idle-time", pool.get("max-idle-time")),
+                getMillis(routeId, "max-life-time", pool.get("max-life-time")),
+                getMillis(routeId, "evict-in-background", pool.get("evict-in-background")));
+        String protocol = Optional.ofNullable(valueMap.get(HTTP_CLIENT_PROTOCOL_KEY)).map(Object::toString).orElse(null);
+        if (protocol != null && !List.of("http11", "h2", "h2c").contains(protocol.toLowerCase())) {
+            throw new IllegalArgumentException(
+                    String.format("Unsupported http-client protocol %s for route %s, use http11, h2 or h2c", protocol, routeId));
+        }
+        return Optional.of(new UpstreamClientSettings(
+                protocol,
+                getBoolean(routeId, HTTP_CLIENT_KEEP_ALIVE_KEY, valueMap.get(HTTP_CLIENT_KEEP_ALIVE_KEY)),
+                getBoolean(routeId, "so-keepalive", tcp.get("so-keepalive")),
+                getBoolean(routeId, "nodelay", tcp.get("nodelay")),
+                poolSettings));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> getMap(String routeId, String key, Object value) {
+        if (!(value instanceof Map)) {
+            throw new IllegalArgumentException(String.format("http-client %s of route %s should be a map", key, routeId));
+        }
+        return (Map<String, Object>) value;
+    }
+
+    /**
+     * read a whole number in int range from a yaml number or string, fractions and overflow are rejected
+     */
+    private static Integer getInteger(String routeId, String key, Object value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return new BigDecimal(value.toString().trim()).intValueExact();
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException(
+                    String.format("http-client %s of route %s should be a whole number in int range", key, routeId), e);
+        }
+    }
+
+    private static Duration getMillis(String routeId, String key, Object value) {
+        Integer millis = getInteger(routeId, key, value);
+        return millis == null ? null : Duration.ofMillis(millis);
+    }
+
+    private static Boolean getBoolean(String routeId, String key, Object value) {
+        if (value == null || value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        String text = value.toString().trim();
+        if (!"true".equalsIgnoreCase(text) && !"false".equalsIgnoreCase(text)) {
+            throw new IllegalArgumentException(String.format("http-client %s of route %s should be true or false", key, routeId));
+        }
+        return Boolean.valueOf(text);
+    }
+
+    @Override
+    public synchronized void destroy() {
+        routeClients.values().forEach(RouteClient::dispose);
+        routeClients = Map.of();
+    }
+
+    private record RouteClient(UpstreamClientSettings settings, HttpClient httpClient, ConnectionProvider connectionProvider) {
+        void dispose() {
+            if (connectionProvider != null) {
+                connectionProvider.disposeLater().subscribe();
+            }
+        }
+    }
+}
@@ -11,5 +11,14 @@ public class Constants {
     public static final String IP_BASED_RATE_LIMIT_PREFIX = "IP_RATE_LIMIT_";
     public static final String RATE_LIMIT_EXCEED_ERROR_LOG_MSG = "Rate Limit Exceeded for route id %s for user %s";
     public static final String RATE_LIMIT_EXCEED_ERROR_FOR_IP_LOG_MSG = "Rate Limit Exceeded of api call for route id {} for ip {}";
+    public static final String HTTP_CLIENT_METADATA_KEY = "http-client";
+    public static final String HTTP_CLIENT_PROTOCOL_KEY = "protocol";
+    public static final String HTTP_CLIENT_KEEP_ALIVE_KEY = "keep-alive";
+    public static final String HTTP_CLIENT_POOL_KEY = "pool";
+    public static final String HTTP_CLIENT_TCP_KEY = "tcp";
+    public static final String UPSTREAM_POOL_NAME_PREFIX = "upstream-";
+    public static final String GZIP_ENCODING = "gzip";
+    public static final String DEFLATE_ENCODING = "deflate";
+    public static final String IDENTITY_ENCODING = "identity";
 
 }
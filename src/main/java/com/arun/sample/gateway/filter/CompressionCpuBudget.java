@@ -0,0 +1,53 @@
+package com.arun.sample.gateway.filter;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket of cpu time (nanos) spent in compression. It refills at nanosPerSecond and holds at most one second
+ * of budget. A response starts compressing only while tokens are left, the time actually spent deflating is then
+ * taken from the bucket, so a response already started can make the bucket negative and delay the next ones
+ */
+class CompressionCpuBudget {
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private final long nanosPerSecond;
+    private final LongSupplier clock;
+    private double available;
+    private long lastRefill;
+
+    CompressionCpuBudget(long nanosPerSecond, LongSupplier clock) {
+        this.nanosPerSecond = nanosPerSecond;
+        this.clock = clock;
+        this.available = nanosPerSecond;
+        this.lastRefill = clock.getAsLong();
+    }
+
+    /**
+     * budget as a percent of the total cpu of the host, 0 or less means unlimited
+     *
+     * @param percent
+     * @return
+     */
+    static CompressionCpuBudget ofPercent(int percent) {
+        if (percent <= 0) {
+            return new CompressionCpuBudget(Long.MAX_VALUE, System::nanoTime);
+        }
+        long nanosPerSecond = NANOS_PER_SECOND / 100 * Math.min(percent, 100) * Runtime.getRuntime().availableProcessors();
+        return new CompressionCpuBudget(nanosPerSecond, System::nanoTime);
+    }
+
+    synchronized boolean hasBudget() {
+        if (nanosPerSecond == Long.MAX_VALUE) {
+            return true;
+        }
+        long now = clock.getAsLong();
+        available = Math.min(nanosPerSecond, available + (double) (now - lastRefill) * nanosPerSecond / NANOS_PER_SECOND);
+        lastRefill = now;
+        return available > 0;
+    }
+
+    synchronized void consume(long nanos) {
+        if (nanosPerSecond != Long.MAX_VALUE) {
+            available -= nanos;
+        }
+    }
+}
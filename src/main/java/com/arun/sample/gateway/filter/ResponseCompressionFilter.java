@@ -0,0 +1,382 @@
+package com.arun.sample.gateway.filter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.Setter;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.commons.pool2.BaseKeyedPooledObjectFactory;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.commons.pool2.impl.GenericKeyedObjectPool;
+import org.apache.commons.pool2.impl.GenericKeyedObjectPoolConfig;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.zip.Deflater;
+
+import static com.arun.sample.gateway.constants.Constants.*;
+
+/**
+ * Compress the upstream response with gzip or deflate as negotiated from the Accept-Encoding header.
+ * Response already encoded, partial (206 / Content-Range), smaller than minResponseSize or with a content type
+ * not in mimeTypes is sent as is. Without Content-Length the body is held until minResponseSize bytes or its end
+ * to decide. Strong ETag of a compressed response is made weak as the body is changed.
+ * Compressors are pooled (compression.pool-size) as each one holds native memory, the cpu used is limited separately
+ * by compression.cpu-budget-percent. When the budget is used up or every compressor is in use the response is sent
+ * uncompressed instead of waiting and counted in gateway.compression.skipped.
+ */
+@Component
+public class ResponseCompressionFilter extends AbstractGatewayFilterFactory<ResponseCompressionFilter.Config> implements DisposableBean {
+    public static final int RESPONSE_COMPRESSION_FILTER_ORDER = NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1;
+    private static final Log logger = LogFactory.getLog(ResponseCompressionFilter.class);
+    private static final String WEAK_ETAG_PREFIX = "W/";
+    private static final String SKIPPED_METRIC = "gateway.compression.skipped";
+    private final GenericKeyedObjectPool<String, StreamingCompressor> compressorPool;
+    private final CompressionCpuBudget cpuBudget;
+    private final Counter cpuBudgetSkipped;
+    private final Counter poolExhaustedSkipped;
+
+    @Autowired
+    public ResponseCompressionFilter(@Value("${compression.pool-size:256}") int poolSize,
+                                     @Value("${compression.cpu-budget-percent:50}") int cpuBudgetPercent,
+                                     MeterRegistry meterRegistry) {
+        this(poolSize, CompressionCpuBudget.ofPercent(cpuBudgetPercent), meterRegistry);
+    }
+
+    ResponseCompressionFilter(int poolSize, CompressionCpuBudget cpuBudget, MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.cpuBudget = cpuBudget;
+        this.cpuBudgetSkipped = Counter.builder(SKIPPED_METRIC)
+                .description("Responses sent uncompressed because compression could not start")
+                .tag("reason", "cpu-budget")
+                .register(meterRegistry);
+        this.poolExhaustedSkipped = Counter.builder(SKIPPED_METRIC)
+                .description("Responses sent uncompressed because compression could not start")
+                .tag("reason", "pool-exhausted")
+                .register(meterRegistry);
+        GenericKeyedObjectPoolConfig<StreamingCompressor> poolConfig = new GenericKeyedObjectPoolConfig<>();
+        poolConfig.setMaxTotal(poolSize);
+        poolConfig.setMaxTotalPerKey(poolSize);
+        poolConfig.setMaxIdlePerKey(poolSize);
+        poolConfig.setBlockWhenExhausted(false);
+        poolConfig.setJmxEnabled(false);
+        this.compressorPool = new GenericKeyedObjectPool<>(new StreamingCompressorFactory(), poolConfig);
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        if (config.getLevel() != Deflater.DEFAULT_COMPRESSION && (config.getLevel() < 1 || config.getLevel() > 9)) {
+            throw new IllegalArgumentException(String.format("Invalid compression level %s, use -1 (default) or 1 to 9", config.getLevel()));
+        }
+        List<MediaType> mimeTypes = config.getMimeTypes().stream().map(MediaType::parseMediaType).toList();
+        // response is wrapped also when nothing is negotiated so Vary is set for every compressible content type
+        return new OrderedGatewayFilter((exchange, chain) -> chain.filter(exchange.mutate()
+                .response(new CompressingResponse(exchange, negotiateEncoding(exchange).orElse(null), config, mimeTypes))
+                .build()), RESPONSE_COMPRESSION_FILTER_ORDER);
+    }
+
+    /**
+     * pick gzip or deflate from Accept-Encoding by quality value, gzip is preferred on same quality.
+     * {@code *} only applies to the encodings not named in the header
+     *
+     * @param exchange
+     * @return
+     */
+    Optional<String> negotiateEncoding(ServerWebExchange exchange) {
+        if (HttpMethod.HEAD.equals(exchange.getRequest().getMethod())) {
+            return Optional.empty();
+        }
+        Map<String, Double> qualities = new HashMap<>();
+        for (String acceptEncoding : exchange.getRequest().getHeaders().getOrEmpty(HttpHeaders.ACCEPT_ENCODING)) {
+            for (String token : acceptEncoding.split(",")) {
+                String[] parts = token.trim().split(";");
+                String coding = parts[0].trim().toLowerCase();
+                if (GZIP_ENCODING.equals(coding) || DEFLATE_ENCODING.equals(coding) || "*".equals(coding)) {
+                    qualities.put(coding, getQuality(parts));
+                }
+            }
+        }
+        String selected = null;
+        double selectedQuality = 0;
+        for (String coding : List.of(GZIP_ENCODING, DEFLATE_ENCODING)) {
+            double quality = qualities.getOrDefault(coding, qualities.getOrDefault("*", 0d));
+            if (quality > selectedQuality) {
+                selected = coding;
+                selectedQuality = quality;
+            }
+        }
+        return Optional.ofNullable(selected);
+    }
+
+    private double getQuality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String param = parts[i].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    private StreamingCompressor borrowCompressor(String encoding, int level) {
+        StreamingCompressor compressor;
+        try {
+            compressor = compressorPool.borrowObject(encoding);
+        } catch (NoSuchElementException e) {
+            logger.debug("All compressors in use, sending response uncompressed");
+            poolExhaustedSkipped.increment();
+            return null;
+        } catch (Exception e) {
+            logger.error("Exception while getting compressor ", e);
+            return null;
+        }
+        try {
+            compressor.setLevel(level);
+            return compressor;
+        } catch (RuntimeException e) {
+            logger.error("Exception while setting compression level ", e);
+            releaseCompressor(compressor, SignalType.ON_ERROR);
+            return null;
+        }
+    }
+
+    private void releaseCompressor(StreamingCompressor compressor, SignalType signalType) {
+        try {
+            if (signalType == SignalType.ON_COMPLETE) {
+                compressorPool.returnObject(compressor.getEncoding(), compressor);
+            } else {
+                // on cancel or error the deflater can be in the middle of a chunk so it is not reused
+                compressorPool.invalidateObject(compressor.getEncoding(), compressor);
+            }
+        } catch (Exception e) {
+            logger.error("Exception while releasing compressor ", e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        compressorPool.close();
+    }
+
+    private class CompressingResponse extends ServerHttpResponseDecorator {
+        private final String encoding;
+        private final Config config;
+        private final List<MediaType> mimeTypes;
+
+        CompressingResponse(ServerWebExchange exchange, String encoding, Config config, List<MediaType> mimeTypes) {
+            super(exchange.getResponse());
+            this.encoding = encoding;
+            this.config = config;
+            this.mimeTypes = mimeTypes;
+        }
+
+        /**
+         * streaming responses written with writeAndFlushWith (event-stream) are not compressed, only writeWith is.
+         * Buffers are held until minResponseSize bytes or end of body, then the cpu budget is checked and the
+         * compressor borrowed, after that every buffer is compressed as it comes
+         */
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            return Mono.defer(() -> {
+                if (!isCompressibleContent()) {
+                    return super.writeWith(body);
+                }
+                addVary(getHeaders());
+                if (encoding == null || !isCompressible()) {
+                    return super.writeWith(body);
+                }
+                int minResponseSize = config.getMinResponseSize();
+                long[] heldBytes = new long[1];
+                return super.writeWith(Flux.<DataBuffer>from(body)
+                        .bufferUntil(buffer -> (heldBytes[0] += buffer.readableByteCount()) >= minResponseSize)
+                        .switchOnFirst((first, chunks) -> {
+                            Flux<DataBuffer> buffers = chunks.flatMapIterable(list -> list);
+                            // a first chunk below minResponseSize is the whole body
+                            if (!first.hasValue() || size(first.get()) < minResponseSize) {
+                                return buffers;
+                            }
+                            CompressionLease lease = startCompression();
+                            if (lease == null) {
+                                return buffers;
+                            }
+                            return buffers.map(lease::compress)
+                                    .concatWith(Mono.fromCallable(lease::finish))
+                                    .doFinally(lease::release);
+                        })
+                        .doOnDiscard(DataBuffer.class, DataBufferUtils::release));
+            });
+        }
+
+        private CompressionLease startCompression() {
+            if (!cpuBudget.hasBudget()) {
+                logger.debug("Compression cpu budget used up, sending response uncompressed");
+                cpuBudgetSkipped.increment();
+                return null;
+            }
+            StreamingCompressor compressor = borrowCompressor(encoding, config.getLevel());
+            if (compressor == null) {
+                return null;
+            }
+            HttpHeaders headers = getHeaders();
+            headers.remove(HttpHeaders.CONTENT_LENGTH);
+            headers.remove(HttpHeaders.ACCEPT_RANGES);
+            headers.set(HttpHeaders.CONTENT_ENCODING, encoding);
+            String eTag = headers.getETag();
+            if (eTag != null && !eTag.startsWith(WEAK_ETAG_PREFIX)) {
+                headers.setETag(WEAK_ETAG_PREFIX + eTag);
+            }
+            return new CompressionLease(compressor, bufferFactory());
+        }
+
+        private boolean isCompressibleContent() {
+            HttpHeaders headers = getHeaders();
+            String contentEncoding = headers.getFirst(HttpHeaders.CONTENT_ENCODING);
+            if (contentEncoding != null && !IDENTITY_ENCODING.equalsIgnoreCase(contentEncoding)) {
+                return false;
+            }
+            MediaType contentType = headers.getContentType();
+            return contentType != null && mimeTypes.stream().anyMatch(mimeType -> mimeType.isCompatibleWith(contentType));
+        }
+
+        private boolean isCompressible() {
+            HttpHeaders headers = getHeaders();
+            HttpStatusCode statusCode = getStatusCode();
+            if (HttpStatus.NO_CONTENT.equals(statusCode) || HttpStatus.NOT_MODIFIED.equals(statusCode)
+                    || HttpStatus.PARTIAL_CONTENT.equals(statusCode) || headers.containsKey(HttpHeaders.CONTENT_RANGE)) {
+                return false;
+            }
+            long contentLength = headers.getContentLength();
+            return contentLength < 0 || contentLength >= config.getMinResponseSize();
+        }
+
+        private void addVary(HttpHeaders headers) {
+            if (headers.getVary().stream().noneMatch(vary -> "*".equals(vary) || HttpHeaders.ACCEPT_ENCODING.equalsIgnoreCase(vary))) {
+                headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            }
+        }
+
+        private static long size(List<DataBuffer> buffers) {
+            return buffers.stream().mapToLong(DataBuffer::readableByteCount).sum();
+        }
+    }
+
+    /**
+     * compressor borrowed for one response. Calls are serialized so a cancel on another thread does not end
+     * the deflater while a chunk is being compressed, after release incoming buffers are only freed
+     */
+    private class CompressionLease {
+        private final StreamingCompressor compressor;
+        private final DataBufferFactory bufferFactory;
+        private boolean released;
+
+        CompressionLease(StreamingCompressor compressor, DataBufferFactory bufferFactory) {
+            this.compressor = compressor;
+            this.bufferFactory = bufferFactory;
+        }
+
+        synchronized DataBuffer compress(DataBuffer buffer) {
+            try {
+                if (released) {
+                    return bufferFactory.allocateBuffer(0);
+                }
+                long start = System.nanoTime();
+                try {
+                    return compressor.compress(buffer, bufferFactory);
+                } finally {
+                    cpuBudget.consume(System.nanoTime() - start);
+                }
+            } finally {
+                DataBufferUtils.release(buffer);
+            }
+        }
+
+        synchronized DataBuffer finish() {
+            if (released) {
+                return bufferFactory.allocateBuffer(0);
+            }
+            long start = System.nanoTime();
+            try {
+                return compressor.finish(bufferFactory);
+            } finally {
+                cpuBudget.consume(System.nanoTime() - start);
+            }
+        }
+
+        synchronized void release(SignalType signalType) {
+            if (!released) {
+                released = true;
+                releaseCompressor(compressor, signalType);
+            }
+        }
+    }
+
+    private static class StreamingCompressorFactory extends BaseKeyedPooledObjectFactory<String, StreamingCompressor> {
+        @Override
+        public StreamingCompressor create(String encoding) {
+            return new StreamingCompressor(encoding);
+        }
+
+        @Override
+        public PooledObject<StreamingCompressor> wrap(StreamingCompressor compressor) {
+            return new DefaultPooledObject<>(compressor);
+        }
+
+        @Override
+        public void passivateObject(String encoding, PooledObject<StreamingCompressor> pooledObject) {
+            pooledObject.getObject().reset();
+        }
+
+        @Override
+        public void destroyObject(String encoding, PooledObject<StreamingCompressor> pooledObject) {
+            pooledObject.getObject().end();
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class Config {
+        /**
+         * Response below this size (bytes) are not compressed, without Content-Length the body is held up to this size
+         */
+        private int minResponseSize = 1024;
+
+        /**
+         * Deflater level 1 (fastest) to 9 (smallest) or -1 for default (6), lower level use less cpu per MB
+         */
+        private int level = Deflater.DEFAULT_COMPRESSION;
+
+        private List<String> mimeTypes = List.of(MediaType.APPLICATION_JSON_VALUE, MediaType.TEXT_PLAIN_VALUE,
+                MediaType.TEXT_HTML_VALUE, MediaType.TEXT_XML_VALUE, MediaType.APPLICATION_XML_VALUE, "application/javascript");
+    }
+}
@@ -0,0 +1,44 @@
+package com.arun.sample.gateway.filter;
+
+import com.arun.sample.gateway.config.UpstreamHttpClientRegistry;
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.netty.http.client.HttpClient;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.springframework.cloud.gateway.support.RouteMetadataUtils.CONNECT_TIMEOUT_ATTR;
+
+/**
+ * Replace the default netty routing filter (disabled with spring.cloud.gateway.global-filter.netty-routing.enabled)
+ * to send the request with the http client configured in the route metadata.
+ */
+@Component
+public class RouteHttpClientRoutingFilter extends NettyRoutingFilter {
+
+    private final UpstreamHttpClientRegistry upstreamHttpClientRegistry;
+
+    public RouteHttpClientRoutingFilter(HttpClient httpClient, ObjectProvider<List<HttpHeadersFilter>> headersFiltersProvider,
+                                        HttpClientProperties properties, UpstreamHttpClientRegistry upstreamHttpClientRegistry) {
+        super(httpClient, headersFiltersProvider, properties);
+        this.upstreamHttpClientRegistry = upstreamHttpClientRegistry;
+    }
+
+    @Override
+    protected HttpClient getHttpClient(Route route, ServerWebExchange exchange) {
+        HttpClient routeClient = upstreamHttpClientRegistry.getHttpClient(route);
+        if (routeClient == null) {
+            return super.getHttpClient(route, exchange);
+        }
+        return Optional.ofNullable(route.getMetadata().get(CONNECT_TIMEOUT_ATTR))
+                .map(connectTimeout -> routeClient.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, Integer.valueOf(connectTimeout.toString())))
+                .orElse(routeClient);
+    }
+}
@@ -0,0 +1,131 @@
+package com.arun.sample.gateway.filter;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static com.arun.sample.gateway.constants.Constants.GZIP_ENCODING;
+
+/**
+ * Compress a response body chunk by chunk in gzip or deflate (zlib) format. Every chunk is sync flushed so the
+ * client gets the data as soon as upstream sends it, nothing more than the current chunk is held in memory.
+ * Instance is not thread safe and is reused through a pool, call {@link #reset()} before reusing it.
+ */
+public class StreamingCompressor {
+
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final int OUTPUT_CHUNK_SIZE = 8192;
+
+    private final String encoding;
+    private final boolean gzip;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final byte[] output = new byte[OUTPUT_CHUNK_SIZE];
+    private boolean headerWritten;
+
+    public StreamingCompressor(String encoding) {
+        this.encoding = encoding;
+        this.gzip = GZIP_ENCODING.equals(encoding);
+        // gzip writes its own header and trailer so the deflater only produce raw deflate data
+        this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, gzip);
+    }
+
+    public String getEncoding() {
+        return encoding;
+    }
+
+    public void setLevel(int level) {
+        deflater.setLevel(level);
+    }
+
+    /**
+     * compress the readable bytes of input, input is not released
+     *
+     * @param input
+     * @param bufferFactory
+     * @return compressed bytes of input
+     */
+    public DataBuffer compress(DataBuffer input, DataBufferFactory bufferFactory) {
+        DataBuffer result = bufferFactory.allocateBuffer(Math.max(input.readableByteCount() / 2, 64));
+        try {
+            writeHeader(result);
+            try (DataBuffer.ByteBufferIterator iterator = input.readableByteBuffers()) {
+                while (iterator.hasNext()) {
+                    ByteBuffer byteBuffer = iterator.next();
+                    if (gzip) {
+                        crc.update(byteBuffer.duplicate());
+                    }
+                    deflater.setInput(byteBuffer);
+                    while (!deflater.needsInput()) {
+                        write(result, deflater.deflate(output, 0, output.length, Deflater.NO_FLUSH));
+                    }
+                }
+            }
+            int length;
+            do {
+                length = deflater.deflate(output, 0, output.length, Deflater.SYNC_FLUSH);
+                write(result, length);
+            } while (length == output.length);
+            return result;
+        } catch (RuntimeException e) {
+            DataBufferUtils.release(result);
+            throw e;
+        }
+    }
+
+    /**
+     * finish the stream, gzip trailer is added for gzip encoding
+     *
+     * @param bufferFactory
+     * @return last bytes of the compressed body
+     */
+    public DataBuffer finish(DataBufferFactory bufferFactory) {
+        DataBuffer result = bufferFactory.allocateBuffer(64);
+        try {
+            writeHeader(result);
+            deflater.finish();
+            while (!deflater.finished()) {
+                write(result, deflater.deflate(output, 0, output.length));
+            }
+            if (gzip) {
+                writeIntLittleEndian(result, (int) crc.getValue());
+                writeIntLittleEndian(result, (int) deflater.getBytesRead());
+            }
+            return result;
+        } catch (RuntimeException e) {
+            DataBufferUtils.release(result);
+            throw e;
+        }
+    }
+
+    public void reset() {
+        deflater.reset();
+        crc.reset();
+        headerWritten = false;
+    }
+
+    public void end() {
+        deflater.end();
+    }
+
+    private void writeHeader(DataBuffer result) {
+        if (gzip && !headerWritten) {
+            result.write(GZIP_HEADER);
+        }
+        headerWritten = true;
+    }
+
+    private void write(DataBuffer result, int length) {
+        if (length > 0) {
+            result.write(output, 0, length);
+        }
+    }
+
+    private static void writeIntLittleEndian(DataBuffer result, int value) {
+        result.write(new byte[]{(byte) value, (byte) (value >> 8), (byte) (value >> 16), (byte) (value >> 24)});
+    }
+}
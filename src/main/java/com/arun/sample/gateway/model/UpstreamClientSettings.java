@@ -0,0 +1,15 @@
+package com.arun.sample.gateway.model;
+
+import java.time.Duration;
+
+/**
+ * Upstream http client settings read from the {@code http-client} block of a route metadata.
+ * A {@code null} value means the gateway default is kept for that setting.
+ */
+public record UpstreamClientSettings(String protocol, Boolean keepAlive, Boolean soKeepAlive, Boolean tcpNoDelay,
+                                     PoolSettings pool) {
+
+    public record PoolSettings(Integer maxConnections, Integer pendingAcquireMaxCount, Duration pendingAcquireTimeout,
+                               Duration maxIdleTime, Duration maxLifeTime, Duration evictInBackground) {
+    }
+}
@@ -0,0 +1,160 @@
+package com.arun.sample.gateway.config;
+
+import com.arun.sample.gateway.model.UpstreamClientSettings;
+import com.arun.sample.gateway.model.UpstreamClientSettings.PoolSettings;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.cloud.gateway.config.HttpClientCustomizer;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.config.HttpClientSslConfigurer;
+import org.springframework.cloud.gateway.route.Route;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static com.arun.sample.gateway.constants.Constants.HTTP_CLIENT_METADATA_KEY;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class UpstreamHttpClientRegistryTests {
+
+    private UpstreamHttpClientRegistry registry;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        HttpClientSslConfigurer sslConfigurer = mock(HttpClientSslConfigurer.class);
+        when(sslConfigurer.configureSsl(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        ObjectProvider<HttpClientCustomizer> customizers = mock(ObjectProvider.class);
+        when(customizers.orderedStream()).thenAnswer(invocation -> Stream.empty());
+        registry = new UpstreamHttpClientRegistry(new HttpClientProperties(), new ServerProperties(), sslConfigurer,
+                customizers, HttpClient.create());
+    }
+
+    @AfterEach
+    void tearDown() {
+        registry.destroy();
+    }
+
+    @Test
+    void parseFullBlock() {
+        Optional<UpstreamClientSettings> settings = UpstreamHttpClientRegistry.parse("route", Map.of(
+                "protocol", "h2",
+                "keep-alive", true,
+                "tcp", Map.of("so-keepalive", true, "nodelay", false),
+                "pool", Map.of("max-connections", 200, "pending-acquire-max-count", 400, "pending-acquire-timeout", 2000,
+                        "max-idle-time", 30000, "max-life-time", 300000, "evict-in-background", 60000)));
+
+        assertEquals(Optional.of(new UpstreamClientSettings("h2", true, true, false,
+                new PoolSettings(200, 400, Duration.ofMillis(2000), Duration.ofMillis(30000),
+                        Duration.ofMillis(300000), Duration.ofMillis(60000)))), settings);
+    }
+
+    @Test
+    void parsePartialBlock() {
+        Optional<UpstreamClientSettings> settings = UpstreamHttpClientRegistry.parse("route", Map.of(
+                "pool", Map.of("max-connections", 10)));
+
+        assertEquals(Optional.of(new UpstreamClientSettings(null, null, null, null,
+                new PoolSettings(10, null, null, null, null, null))), settings);
+    }
+
+    @Test
+    void parseStringsSameAsNumbers() {
+        Map<String, Object> numbers = Map.of("keep-alive", false, "tcp", Map.of("nodelay", true),
+                "pool", Map.of("max-connections", 50, "max-idle-time", 1000));
+        Map<String, Object> strings = Map.of("keep-alive", "false", "tcp", Map.of("nodelay", "true"),
+                "pool", Map.of("max-connections", "50", "max-idle-time", " 1000 "));
+
+        assertEquals(UpstreamHttpClientRegistry.parse("route", numbers), UpstreamHttpClientRegistry.parse("route", strings));
+    }
+
+    @Test
+    void parseInvalidValues() {
+        assertThrows(IllegalArgumentException.class, () -> UpstreamHttpClientRegistry.parse("route", "h2"));
+        assertThrows(IllegalArgumentException.class, () -> UpstreamHttpClientRegistry.parse("route", Map.of("pool", 10)));
+        assertThrows(IllegalArgumentException.class, () -> UpstreamHttpClientRegistry.parse("route", Map.of("tcp", "nodelay")));
+        assertThrows(IllegalArgumentException.class,
+                () -> UpstreamHttpClientRegistry.parse("route", Map.of("pool", Map.of("max-idle-time", "30s"))));
+        assertThrows(IllegalArgumentException.class, () -> UpstreamHttpClientRegistry.parse("route", Map.of("keep-alive", "yes")));
+    }
+
+    @Test
+    void parseRejectsFractionAndOverflow() {
+        assertThrows(IllegalArgumentException.class,
+                () -> UpstreamHttpClientRegistry.parse("route", Map.of("pool", Map.of("max-connections", 1.5))));
+        assertThrows(IllegalArgumentException.class,
+                () -> UpstreamHttpClientRegistry.parse("route", Map.of("pool", Map.of("max-connections", "1.5"))));
+        assertThrows(IllegalArgumentException.class,
+                () -> UpstreamHttpClientRegistry.parse("route", Map.of("pool", Map.of("max-idle-time", 3_000_000_000L))));
+        assertThrows(IllegalArgumentException.class,
+                () -> UpstreamHttpClientRegistry.parse("route", Map.of("pool", Map.of("max-idle-time", "3000000000"))));
+    }
+
+    @Test
+    void unsupportedProtocol() {
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> UpstreamHttpClientRegistry.parse("route", Map.of("protocol", "spdy")));
+        assertTrue(exception.getMessage().contains("spdy"));
+
+        registry.refresh(List.of(route("route", Map.of(HTTP_CLIENT_METADATA_KEY, Map.of("protocol", "spdy")))));
+        assertNull(registry.getHttpClient(route("route", Map.of())));
+    }
+
+    @Test
+    void sharedClientWithoutHttpClientBlock() {
+        Route route = route("route", Map.of("response-timeout", 5000));
+        registry.refresh(List.of(route));
+
+        assertNull(registry.getHttpClient(route));
+    }
+
+    @Test
+    void protocolSelection() {
+        registry.refresh(List.of(
+                route("h2c", Map.of(HTTP_CLIENT_METADATA_KEY, Map.of("protocol", "h2c"))),
+                route("http11", Map.of(HTTP_CLIENT_METADATA_KEY, Map.of("protocol", "HTTP11", "pool", Map.of("max-connections", 5))))));
+
+        assertArrayEquals(new HttpProtocol[]{HttpProtocol.H2C},
+                registry.getHttpClient(route("h2c", Map.of())).configuration().protocols());
+        assertArrayEquals(new HttpProtocol[]{HttpProtocol.HTTP11},
+                registry.getHttpClient(route("http11", Map.of())).configuration().protocols());
+    }
+
+    @Test
+    void rebuildOnlyWhenSettingsChange() {
+        Map<String, Object> metadata = Map.of(HTTP_CLIENT_METADATA_KEY, Map.of("pool", Map.of("max-connections", 5)));
+        registry.refresh(List.of(route("route", metadata)));
+        HttpClient first = registry.getHttpClient(route("route", Map.of()));
+
+        registry.refresh(List.of(route("route", metadata)));
+        assertSame(first, registry.getHttpClient(route("route", Map.of())));
+
+        registry.refresh(List.of(route("route", Map.of(HTTP_CLIENT_METADATA_KEY, Map.of("pool", Map.of("max-connections", 10))))));
+        HttpClient rebuilt = registry.getHttpClient(route("route", Map.of()));
+        assertNotNull(rebuilt);
+        assertNotSame(first, rebuilt);
+
+        registry.refresh(List.of());
+        assertNull(registry.getHttpClient(route("route", Map.of())));
+    }
+
+    private Route route(String id, Map<String, Object> metadata) {
+        return Route.async()
+                .id(id)
+                .uri("http://localhost:8080")
+                .predicate(exchange -> true)
+                .metadata(metadata)
+                .build();
+    }
+}
@@ -0,0 +1,298 @@
+package com.arun.sample.gateway.filter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static com.arun.sample.gateway.constants.Constants.DEFLATE_ENCODING;
+import static com.arun.sample.gateway.constants.Constants.GZIP_ENCODING;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseCompressionFilterTests {
+
+    private static final byte[] BODY = "{\"id\":1,\"user\":\"user1\"},".repeat(500).getBytes(StandardCharsets.UTF_8);
+
+    private static final long ONE_SECOND_NANOS = 1_000_000_000L;
+
+    private final AtomicLong clock = new AtomicLong();
+    private final CompressionCpuBudget cpuBudget = new CompressionCpuBudget(ONE_SECOND_NANOS, clock::get);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ResponseCompressionFilter filterFactory = new ResponseCompressionFilter(1, cpuBudget, meterRegistry);
+
+    @AfterEach
+    void tearDown() {
+        filterFactory.destroy();
+    }
+
+    @Test
+    void negotiateEncodingByQuality() {
+        assertEquals(Optional.of(GZIP_ENCODING), negotiate("gzip, deflate"));
+        assertEquals(Optional.of(DEFLATE_ENCODING), negotiate("gzip;q=0.5, deflate"));
+        assertEquals(Optional.of(GZIP_ENCODING), negotiate("deflate;q=0.8, gzip;q=0.9, br"));
+        assertEquals(Optional.empty(), negotiate("br, identity"));
+        assertEquals(Optional.empty(), negotiate(null));
+    }
+
+    @Test
+    void negotiateEncodingWithWildcardAndRefused() {
+        assertEquals(Optional.of(GZIP_ENCODING), negotiate("*"));
+        assertEquals(Optional.of(DEFLATE_ENCODING), negotiate("gzip;q=0, *"));
+        assertEquals(Optional.of(GZIP_ENCODING), negotiate("deflate;q=0.1, *;q=0.5"));
+        assertEquals(Optional.empty(), negotiate("gzip;q=0, deflate;q=0"));
+        assertEquals(Optional.empty(), negotiate("*;q=0"));
+    }
+
+    @Test
+    void negotiateEncodingSkipsHead() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(
+                MockServerHttpRequest.head("/v1/example").header(HttpHeaders.ACCEPT_ENCODING, "gzip"));
+        assertEquals(Optional.empty(), filterFactory.negotiateEncoding(exchange));
+    }
+
+    @Test
+    void compressResponse() throws IOException {
+        MockServerWebExchange exchange = exchange("gzip");
+        write(filter(new ResponseCompressionFilter.Config()), exchange, headers -> {
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            headers.setContentLength(BODY.length);
+            headers.setETag("\"v1\"");
+            headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        }, Flux.just(buffer(BODY))).block();
+
+        HttpHeaders headers = exchange.getResponse().getHeaders();
+        assertEquals(GZIP_ENCODING, headers.getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(-1, headers.getContentLength());
+        assertEquals("W/\"v1\"", headers.getETag());
+        assertFalse(headers.containsKey(HttpHeaders.ACCEPT_RANGES));
+        assertEquals(List.of(HttpHeaders.ACCEPT_ENCODING), headers.getVary());
+        assertArrayEquals(BODY, StreamingCompressorTests.decompress(GZIP_ENCODING, body(exchange.getResponse())));
+    }
+
+    @Test
+    void compressChunkedResponseWithoutContentLength() throws IOException {
+        MockServerWebExchange exchange = exchange("deflate");
+        List<DataBuffer> chunks = new ArrayList<>();
+        for (int offset = 0; offset < BODY.length; offset += 100) {
+            chunks.add(buffer(Arrays.copyOfRange(BODY, offset, Math.min(offset + 100, BODY.length))));
+        }
+        write(filter(new ResponseCompressionFilter.Config()), exchange,
+                headers -> headers.setContentType(MediaType.APPLICATION_JSON), Flux.fromIterable(chunks)).block();
+
+        assertEquals(DEFLATE_ENCODING, exchange.getResponse().getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertArrayEquals(BODY, StreamingCompressorTests.decompress(DEFLATE_ENCODING, body(exchange.getResponse())));
+    }
+
+    @Test
+    void skipSmallChunkedResponse() {
+        byte[] small = "{\"id\":1}".getBytes(StandardCharsets.UTF_8);
+        MockServerWebExchange exchange = exchange("gzip");
+        write(filter(new ResponseCompressionFilter.Config()), exchange,
+                headers -> headers.setContentType(MediaType.APPLICATION_JSON), Flux.just(buffer(small))).block();
+
+        HttpHeaders headers = exchange.getResponse().getHeaders();
+        assertNull(headers.getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(List.of(HttpHeaders.ACCEPT_ENCODING), headers.getVary());
+        assertArrayEquals(small, body(exchange.getResponse()));
+
+        // several chunks still below minResponseSize in total
+        MockServerWebExchange chunked = exchange("gzip");
+        write(filter(new ResponseCompressionFilter.Config()), chunked,
+                responseHeaders -> responseHeaders.setContentType(MediaType.APPLICATION_JSON),
+                Flux.just(buffer(small), buffer(small), buffer(small))).block();
+
+        assertNull(chunked.getResponse().getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(new String(small, StandardCharsets.UTF_8).repeat(3),
+                new String(body(chunked.getResponse()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void varyWithoutNegotiatedEncoding() {
+        MockServerWebExchange exchange = exchange(null);
+        write(filter(new ResponseCompressionFilter.Config()), exchange,
+                headers -> headers.setContentType(MediaType.APPLICATION_JSON), Flux.just(buffer(BODY))).block();
+
+        HttpHeaders headers = exchange.getResponse().getHeaders();
+        assertNull(headers.getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(List.of(HttpHeaders.ACCEPT_ENCODING), headers.getVary());
+        assertArrayEquals(BODY, body(exchange.getResponse()));
+    }
+
+    @Test
+    void varyNotDuplicated() {
+        MockServerWebExchange exchange = exchange("gzip");
+        write(filter(new ResponseCompressionFilter.Config()), exchange, headers -> {
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            headers.add(HttpHeaders.VARY, "Origin, accept-encoding");
+        }, Flux.just(buffer(BODY))).block();
+
+        HttpHeaders headers = exchange.getResponse().getHeaders();
+        assertEquals(GZIP_ENCODING, headers.getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(List.of("Origin", "accept-encoding"), headers.getVary());
+    }
+
+    @Test
+    void skipAlreadyEncoded() {
+        assertNotCompressed(headers -> {
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            headers.set(HttpHeaders.CONTENT_ENCODING, "br");
+        }, null);
+    }
+
+    @Test
+    void skipSmallResponse() {
+        assertNotCompressed(headers -> {
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            headers.setContentLength(100);
+        }, null);
+    }
+
+    @Test
+    void skipNotConfiguredMimeType() {
+        assertNotCompressed(headers -> headers.setContentType(MediaType.IMAGE_PNG), null);
+        assertNotCompressed(headers -> { }, null);
+    }
+
+    @Test
+    void skipNoContentNotModifiedAndPartial() {
+        assertNotCompressed(headers -> headers.setContentType(MediaType.APPLICATION_JSON), HttpStatus.NO_CONTENT);
+        assertNotCompressed(headers -> headers.setContentType(MediaType.APPLICATION_JSON), HttpStatus.NOT_MODIFIED);
+        assertNotCompressed(headers -> headers.setContentType(MediaType.APPLICATION_JSON), HttpStatus.PARTIAL_CONTENT);
+        assertNotCompressed(headers -> {
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes 0-99/1000");
+        }, null);
+    }
+
+    @Test
+    void uncompressedWhenPoolExhausted() {
+        GatewayFilter filter = filter(new ResponseCompressionFilter.Config());
+        Consumer<HttpHeaders> json = headers -> headers.setContentType(MediaType.APPLICATION_JSON);
+
+        // first response holds the only compressor while its upstream body never ends
+        MockServerWebExchange pending = exchange("gzip");
+        Disposable pendingWrite = write(filter, pending, json, Flux.concat(Flux.just(buffer(BODY)), Flux.never())).subscribe();
+        assertEquals(GZIP_ENCODING, pending.getResponse().getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+
+        MockServerWebExchange exhausted = exchange("gzip");
+        write(filter, exhausted, json, Flux.just(buffer(BODY))).block();
+        assertNull(exhausted.getResponse().getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(List.of(HttpHeaders.ACCEPT_ENCODING), exhausted.getResponse().getHeaders().getVary());
+        assertArrayEquals(BODY, body(exhausted.getResponse()));
+        assertEquals(1, skipped("pool-exhausted"));
+
+        // cancelling the pending response gives the slot back
+        pendingWrite.dispose();
+        MockServerWebExchange next = exchange("gzip");
+        write(filter, next, json, Flux.just(buffer(BODY))).block();
+        assertEquals(GZIP_ENCODING, next.getResponse().getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    @Test
+    void uncompressedWhenCpuBudgetUsedUp() {
+        GatewayFilter filter = filter(new ResponseCompressionFilter.Config());
+        Consumer<HttpHeaders> json = headers -> headers.setContentType(MediaType.APPLICATION_JSON);
+        cpuBudget.consume(2 * ONE_SECOND_NANOS);
+
+        MockServerWebExchange overBudget = exchange("gzip");
+        write(filter, overBudget, json, Flux.just(buffer(BODY))).block();
+        assertNull(overBudget.getResponse().getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertArrayEquals(BODY, body(overBudget.getResponse()));
+        assertEquals(1, skipped("cpu-budget"));
+
+        // budget refills with time
+        clock.addAndGet(3 * ONE_SECOND_NANOS);
+        MockServerWebExchange refilled = exchange("gzip");
+        write(filter, refilled, json, Flux.just(buffer(BODY))).block();
+        assertEquals(GZIP_ENCODING, refilled.getResponse().getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(1, skipped("cpu-budget"));
+    }
+
+    @Test
+    void invalidLevelRejected() {
+        ResponseCompressionFilter.Config config = new ResponseCompressionFilter.Config();
+        config.setLevel(10);
+        assertThrows(IllegalArgumentException.class, () -> filterFactory.apply(config));
+        config.setLevel(0);
+        assertThrows(IllegalArgumentException.class, () -> filterFactory.apply(config));
+    }
+
+    private void assertNotCompressed(Consumer<HttpHeaders> upstreamHeaders, HttpStatus status) {
+        MockServerWebExchange exchange = exchange("gzip");
+        if (status != null) {
+            exchange.getResponse().setStatusCode(status);
+        }
+        write(filter(new ResponseCompressionFilter.Config()), exchange, upstreamHeaders, Flux.just(buffer(BODY))).block();
+
+        String contentEncoding = exchange.getResponse().getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING);
+        assertNotEquals(GZIP_ENCODING, contentEncoding);
+        assertArrayEquals(BODY, body(exchange.getResponse()));
+    }
+
+    private double skipped(String reason) {
+        return meterRegistry.get("gateway.compression.skipped").tag("reason", reason).counter().count();
+    }
+
+    private Optional<String> negotiate(String acceptEncoding) {
+        return filterFactory.negotiateEncoding(exchange(acceptEncoding));
+    }
+
+    private GatewayFilter filter(ResponseCompressionFilter.Config config) {
+        return filterFactory.apply(config);
+    }
+
+    private Mono<Void> write(GatewayFilter filter, MockServerWebExchange exchange, Consumer<HttpHeaders> upstreamHeaders,
+                             Publisher<DataBuffer> body) {
+        return filter.filter(exchange, filteredExchange -> {
+            ServerHttpResponse response = filteredExchange.getResponse();
+            upstreamHeaders.accept(response.getHeaders());
+            return response.writeWith(body);
+        });
+    }
+
+    private MockServerWebExchange exchange(String acceptEncoding) {
+        MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.get("/v1/example");
+        if (acceptEncoding != null) {
+            request.header(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+        }
+        return MockServerWebExchange.from(request);
+    }
+
+    private DataBuffer buffer(byte[] bytes) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(bytes);
+    }
+
+    private byte[] body(MockServerHttpResponse response) {
+        return DataBufferUtils.join(response.getBody())
+                .map(buffer -> {
+                    byte[] bytes = new byte[buffer.readableByteCount()];
+                    buffer.read(bytes);
+                    return bytes;
+                })
+                .defaultIfEmpty(new byte[0])
+                .block();
+    }
+}
@@ -0,0 +1,62 @@
+package com.arun.sample.gateway.filter;
+
+import com.arun.sample.gateway.config.UpstreamHttpClientRegistry;
+import io.netty.channel.ChannelOption;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.netty.http.client.HttpClient;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.cloud.gateway.support.RouteMetadataUtils.CONNECT_TIMEOUT_ATTR;
+
+class RouteHttpClientRoutingFilterTests {
+
+    private final HttpClient sharedClient = HttpClient.create();
+    private final HttpClient routeClient = HttpClient.create();
+    private final UpstreamHttpClientRegistry registry = mock(UpstreamHttpClientRegistry.class);
+    private final MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/v1/example"));
+
+    @SuppressWarnings("unchecked")
+    private final RouteHttpClientRoutingFilter filter = new RouteHttpClientRoutingFilter(sharedClient,
+            mock(ObjectProvider.class), new HttpClientProperties(), registry);
+
+    @Test
+    void routeClientWithConnectTimeout() {
+        when(registry.getHttpClient(any())).thenReturn(routeClient);
+
+        HttpClient httpClient = filter.getHttpClient(route(Map.of(CONNECT_TIMEOUT_ATTR, 1500)), exchange);
+
+        assertEquals(1500, httpClient.configuration().options().get(ChannelOption.CONNECT_TIMEOUT_MILLIS));
+        assertSame(routeClient, filter.getHttpClient(route(Map.of()), exchange));
+    }
+
+    @Test
+    void sharedClientWithoutRouteClient() {
+        when(registry.getHttpClient(any())).thenReturn(null);
+
+        assertSame(sharedClient, filter.getHttpClient(route(Map.of()), exchange));
+        HttpClient withTimeout = filter.getHttpClient(route(Map.of(CONNECT_TIMEOUT_ATTR, 1500)), exchange);
+        assertEquals(1500, withTimeout.configuration().options().get(ChannelOption.CONNECT_TIMEOUT_MILLIS));
+        assertNotSame(routeClient, withTimeout);
+    }
+
+    private Route route(Map<String, Object> metadata) {
+        return Route.async()
+                .id("sample-service")
+                .uri("https://www.example.com")
+                .predicate(serverWebExchange -> true)
+                .metadata(metadata)
+                .build();
+    }
+}
@@ -0,0 +1,113 @@
+package com.arun.sample.gateway.filter;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static com.arun.sample.gateway.constants.Constants.DEFLATE_ENCODING;
+import static com.arun.sample.gateway.constants.Constants.GZIP_ENCODING;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Benchmark of the response compression, run with
+ * mvn test -Dtest=StreamingCompressorBenchmarkTests -Dbenchmark=true
+ * prints throughput (MB/s of uncompressed body), cpu time per MB, compression ratio and
+ * the latency added to every chunk (p50/p99) for gzip and deflate at different levels.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class StreamingCompressorBenchmarkTests {
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+    private static final int CHUNKS_PER_BODY = 64;
+    private static final int WARMUP_BODIES = 50;
+    private static final int MEASURED_BODIES = 200;
+
+    private final NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    @Test
+    void compressionBenchmark() throws IOException {
+        byte[] body = jsonBody(CHUNK_SIZE * CHUNKS_PER_BODY);
+        for (String encoding : new String[]{GZIP_ENCODING, DEFLATE_ENCODING}) {
+            for (int level : new int[]{1, 6, 9}) {
+                StreamingCompressor compressor = new StreamingCompressor(encoding);
+                assertArrayEquals(body, StreamingCompressorTests.decompress(encoding, compressBody(compressor, level, body, null)));
+                for (int i = 0; i < WARMUP_BODIES; i++) {
+                    compressBody(compressor, level, body, null);
+                }
+                long[] chunkNanos = new long[MEASURED_BODIES * CHUNKS_PER_BODY];
+                long compressedBytes = 0;
+                long cpuStart = threadMXBean.getCurrentThreadCpuTime();
+                long wallStart = System.nanoTime();
+                for (int i = 0; i < MEASURED_BODIES; i++) {
+                    compressedBytes += compressBody(compressor, level, body, null).length;
+                }
+                long wallNanos = System.nanoTime() - wallStart;
+                long cpuNanos = threadMXBean.getCurrentThreadCpuTime() - cpuStart;
+                measureChunkLatency(compressor, level, body, chunkNanos);
+                compressor.end();
+
+                double megaBytes = (double) body.length * MEASURED_BODIES / (1024 * 1024);
+                Arrays.sort(chunkNanos);
+                System.out.printf("%-7s level %d: throughput %8.1f MB/s, cpu %6.2f ms/MB, ratio %5.2f, chunk latency p50 %6.1f us p99 %6.1f us%n",
+                        encoding, level,
+                        megaBytes / (wallNanos / 1e9),
+                        cpuNanos / 1e6 / megaBytes,
+                        (double) body.length * MEASURED_BODIES / compressedBytes,
+                        chunkNanos[chunkNanos.length / 2] / 1e3,
+                        chunkNanos[(int) (chunkNanos.length * 0.99)] / 1e3);
+            }
+        }
+    }
+
+    private void measureChunkLatency(StreamingCompressor compressor, int level, byte[] body, long[] chunkNanos) {
+        for (int i = 0; i < MEASURED_BODIES; i++) {
+            long[] bodyChunkNanos = new long[CHUNKS_PER_BODY];
+            compressBody(compressor, level, body, bodyChunkNanos);
+            System.arraycopy(bodyChunkNanos, 0, chunkNanos, i * CHUNKS_PER_BODY, CHUNKS_PER_BODY);
+        }
+    }
+
+    /**
+     * compress body chunk by chunk like the gateway filter does, time taken by every chunk is stored in chunkNanos
+     */
+    private byte[] compressBody(StreamingCompressor compressor, int level, byte[] body, long[] chunkNanos) {
+        compressor.reset();
+        compressor.setLevel(level);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4);
+        for (int offset = 0, chunk = 0; offset < body.length; offset += CHUNK_SIZE, chunk++) {
+            DataBuffer input = bufferFactory.allocateBuffer(CHUNK_SIZE).write(body, offset, Math.min(CHUNK_SIZE, body.length - offset));
+            long start = System.nanoTime();
+            DataBuffer output = compressor.compress(input, bufferFactory);
+            if (chunkNanos != null && chunk < chunkNanos.length) {
+                chunkNanos[chunk] = System.nanoTime() - start;
+            }
+            DataBufferUtils.release(input);
+            StreamingCompressorTests.copy(output, compressed);
+        }
+        StreamingCompressorTests.copy(compressor.finish(bufferFactory), compressed);
+        return compressed.toByteArray();
+    }
+
+    private byte[] jsonBody(int size) {
+        StringBuilder json = new StringBuilder(size + 256).append('[');
+        for (int i = 0; json.length() < size; i++) {
+            json.append("{\"id\":").append(i)
+                    .append(",\"user\":\"user").append(i % 1000)
+                    .append("\",\"status\":\"").append(i % 3 == 0 ? "ACTIVE" : "INACTIVE")
+                    .append("\",\"amount\":").append((i * 7919) % 100000 / 100.0)
+                    .append("},");
+        }
+        return Arrays.copyOf(json.toString().getBytes(StandardCharsets.UTF_8), size);
+    }
+}
@@ -0,0 +1,78 @@
+package com.arun.sample.gateway.filter;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static com.arun.sample.gateway.constants.Constants.DEFLATE_ENCODING;
+import static com.arun.sample.gateway.constants.Constants.GZIP_ENCODING;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class StreamingCompressorTests {
+
+    private final DefaultDataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+
+    @Test
+    void gzipRoundTrip() throws IOException {
+        roundTrip(GZIP_ENCODING);
+    }
+
+    @Test
+    void deflateRoundTrip() throws IOException {
+        roundTrip(DEFLATE_ENCODING);
+    }
+
+    @Test
+    void emptyBodyRoundTrip() throws IOException {
+        StreamingCompressor compressor = new StreamingCompressor(GZIP_ENCODING);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        copy(compressor.finish(bufferFactory), compressed);
+        compressor.end();
+
+        assertArrayEquals(new byte[0], decompress(GZIP_ENCODING, compressed.toByteArray()));
+    }
+
+    private void roundTrip(String encoding) throws IOException {
+        byte[] body = "{\"id\":1,\"user\":\"user1\",\"status\":\"ACTIVE\"},".repeat(5000).getBytes(StandardCharsets.UTF_8);
+        StreamingCompressor compressor = new StreamingCompressor(encoding);
+        compressor.setLevel(1);
+        // compressor is reused after reset like when it comes back from the pool
+        for (int run = 0; run < 2; run++) {
+            compressor.reset();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            for (int offset = 0; offset < body.length; offset += 3000) {
+                DataBuffer input = bufferFactory.wrap(ByteBuffer.wrap(body, offset, Math.min(3000, body.length - offset)).slice());
+                copy(compressor.compress(input, bufferFactory), compressed);
+            }
+            copy(compressor.finish(bufferFactory), compressed);
+
+            assertArrayEquals(body, decompress(encoding, compressed.toByteArray()));
+        }
+        compressor.end();
+    }
+
+    static void copy(DataBuffer buffer, ByteArrayOutputStream target) {
+        byte[] bytes = new byte[buffer.readableByteCount()];
+        buffer.read(bytes);
+        target.writeBytes(bytes);
+        DataBufferUtils.release(buffer);
+    }
+
+    static byte[] decompress(String encoding, byte[] compressed) throws IOException {
+        try (InputStream inputStream = GZIP_ENCODING.equals(encoding)
+                ? new GZIPInputStream(new ByteArrayInputStream(compressed))
+                : new InflaterInputStream(new ByteArrayInputStream(compressed))) {
+            return inputStream.readAllBytes();
+        }
+    }
+}